@@ -0,0 +1,178 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.action.termscount;
+
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.logging.ESLogger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches shard operations with at most <tt>maxConcurrentShardRequests</tt> in flight, and reports their
+ * results to a {@link TermsCountStreamListener}.
+ * <p/>
+ * Shard results are queued and the listener is notified on the notify executor, one result at a time, so the
+ * threads delivering the results never run listener code. A new shard operation is only started once the
+ * listener has handled a previous shard.
+ */
+abstract class TermsCountStream {
+
+    private final int totalShards;
+    private final int maxConcurrentShardRequests;
+    private final TermsCountStreamListener listener;
+    private final Executor notifyExecutor;
+    private final ESLogger logger;
+
+    private final AtomicInteger dispatchedShards = new AtomicInteger();
+    private final Queue<ShardResult> pendingResults = new ConcurrentLinkedQueue<ShardResult>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // only touched by the thread draining the pending results
+    private final Map<String, Integer> terms = new HashMap<String, Integer>();
+    private final Map<String, Integer> termsView = Collections.unmodifiableMap(terms);
+    private int completedShards;
+
+    TermsCountStream(int totalShards, int maxConcurrentShardRequests, TermsCountStreamListener listener, Executor notifyExecutor, ESLogger logger) {
+        if (maxConcurrentShardRequests < 1) {
+            throw new ElasticSearchIllegalArgumentException("max_concurrent_shard_requests must be at least 1, got [" + maxConcurrentShardRequests + "]");
+        }
+        this.totalShards = totalShards;
+        this.maxConcurrentShardRequests = maxConcurrentShardRequests;
+        this.listener = listener;
+        this.notifyExecutor = notifyExecutor;
+        this.logger = logger;
+    }
+
+    /**
+     * Starts the operation on the shard with the given index. Must end with exactly one call to either
+     * {@link #onShardResponse} or {@link #onShardDone} for that shard.
+     */
+    protected abstract void performShard(int shardIndex);
+
+    /**
+     * Builds the final response, called once every shard is done.
+     */
+    protected abstract TermsCountResponse buildResponse();
+
+    public void start() {
+        if (totalShards == 0) {
+            notifyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    finishHim();
+                }
+            });
+            return;
+        }
+        int initialShards = Math.min(totalShards, maxConcurrentShardRequests);
+        for (int i = 0; i < initialShards; i++) {
+            performNext();
+        }
+    }
+
+    /**
+     * Reports the terms of a shard that replied.
+     */
+    void onShardResponse(String index, int shardId, Map<String, Integer> shardTerms) {
+        enqueue(new ShardResult(index, shardId, shardTerms));
+    }
+
+    /**
+     * Reports a shard that is done without terms, because it failed or has no active copy.
+     */
+    void onShardDone() {
+        enqueue(new ShardResult(null, -1, null));
+    }
+
+    private void performNext() {
+        int shardIndex = dispatchedShards.getAndIncrement();
+        if (shardIndex < totalShards) {
+            performShard(shardIndex);
+        }
+    }
+
+    private void enqueue(ShardResult result) {
+        pendingResults.add(result);
+        if (pendingCount.getAndIncrement() == 0) {
+            notifyExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    do {
+                        process(pendingResults.poll());
+                    } while (pendingCount.decrementAndGet() > 0);
+                }
+            });
+        }
+    }
+
+    private void process(ShardResult result) {
+        completedShards++;
+        if (result.terms != null) {
+            for (Map.Entry<String, Integer> entry : result.terms.entrySet()) {
+                Integer count = terms.get(entry.getKey());
+                terms.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+            }
+            try {
+                listener.onShardResult(result.index, result.shardId, result.terms);
+                listener.onPartialAggregate(termsView, completedShards, totalShards);
+            } catch (Throwable e) {
+                logger.warn("[{}][{}] failed to notify terms count stream listener", e, result.index, result.shardId);
+            }
+        }
+        if (completedShards == totalShards) {
+            finishHim();
+        } else {
+            performNext();
+        }
+    }
+
+    private void finishHim() {
+        TermsCountResponse response;
+        try {
+            response = buildResponse();
+        } catch (Throwable e) {
+            listener.onFailure(e);
+            return;
+        }
+        try {
+            listener.onComplete(response);
+        } catch (Throwable e) {
+            logger.warn("failed to notify terms count stream listener", e);
+        }
+    }
+
+    static class ShardResult {
+
+        final String index;
+        final int shardId;
+        final Map<String, Integer> terms;
+
+        ShardResult(String index, int shardId, Map<String, Integer> terms) {
+            this.index = index;
+            this.shardId = shardId;
+            this.terms = terms;
+        }
+    }
+}
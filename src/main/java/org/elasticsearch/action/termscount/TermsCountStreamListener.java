@@ -0,0 +1,54 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.action.termscount;
+
+import java.util.Map;
+
+/**
+ * Receives terms count results shard by shard, as each shard replies.
+ * <p/>
+ * Callbacks run on the generic thread pool, never concurrently. At most <tt>maxConcurrentShardRequests</tt>
+ * shard requests are in flight, and a new one is only sent once the listener has handled a previous shard, so
+ * a slow listener holds back the request and at most that many shard results wait for it.
+ *
+ * @see TransportTermsCountAction#executeStreaming(TermsCountRequest, int, TermsCountStreamListener)
+ */
+public interface TermsCountStreamListener {
+
+    /**
+     * Called with the terms of a single shard as soon as that shard replies.
+     */
+    void onShardResult(String index, int shardId, Map<String, Integer> terms);
+
+    /**
+     * Called after each shard result with the counts merged so far. The map is a read only view that keeps
+     * changing after the callback returns, copy it to keep it.
+     */
+    void onPartialAggregate(Map<String, Integer> terms, int completedShards, int totalShards);
+
+    /**
+     * Called once every shard has either replied or failed.
+     */
+    void onComplete(TermsCountResponse response);
+
+    /**
+     * Called instead of {@link #onComplete} when the request could not be executed.
+     */
+    void onFailure(Throwable e);
+}
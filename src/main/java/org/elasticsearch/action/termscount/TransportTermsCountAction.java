@@ -23,27 +23,37 @@ import org.apache.lucene.index.TermEnum;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.action.ShardOperationFailedException;
 import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationThreading;
 import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.TransportBroadcastOperationAction;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.block.ClusterBlockException;
 import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.BaseTransportResponseHandler;
+import org.elasticsearch.transport.TransportException;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static org.elasticsearch.common.collect.Lists.newArrayList;
@@ -57,11 +67,18 @@ public class TransportTermsCountAction
     private final IndicesService indicesService;
     private final Object termlistMutex = new Object();
 
+    // same name as the shard level handler registered by TransportBroadcastOperationAction
+    private final String transportShardAction;
+
+    private final int maxConcurrentShardRequests;
+
     @Inject
     public TransportTermsCountAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
                                      TransportService transportService, IndicesService indicesService) {
         super(settings, threadPool, clusterService, transportService);
         this.indicesService = indicesService;
+        this.transportShardAction = transportAction() + "/s";
+        this.maxConcurrentShardRequests = settings.getAsInt("termscount.stream.max_concurrent_shard_requests", 5);
     }
 
     @Override
@@ -104,7 +121,10 @@ public class TransportTermsCountAction
                 successfulShards++;
                 if (shardResponse instanceof ShardTermsCountResponse) {
                     ShardTermsCountResponse resp = (ShardTermsCountResponse) shardResponse;
-                    terms.putAll(resp.getTermList());
+                    for (Map.Entry<String, Integer> entry : resp.getTermList().entrySet()) {
+                        Integer count = terms.get(entry.getKey());
+                        terms.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+                    }
                 }
             }
         }
@@ -134,24 +154,247 @@ public class TransportTermsCountAction
             try {
                 Map<String, Integer> set = new HashMap<String, Integer>();
                 TermEnum te = searcher.reader().terms();
-                do {
-                    Term t = te.term();
-                    if (t != null && t.field().charAt(0) != '_') {
-                        if (request.getField() == null || t.field().equals(request.getField())) {
-                            String term = t.text();
-                            Integer count = set.get(term);
-                            if (count == null)
-                                count = 0;
-                            set.put(term, ++count);
+                try {
+                    do {
+                        Term t = te.term();
+                        if (t != null && t.field().charAt(0) != '_') {
+                            if (request.getField() == null || t.field().equals(request.getField())) {
+                                String term = t.text();
+                                Integer count = set.get(term);
+                                if (count == null)
+                                    count = 0;
+                                set.put(term, ++count);
+                            }
                         }
-                    }
-                } while (te.next());
-                te.close();
+                    } while (te.next());
+                } finally {
+                    te.close();
+                }
                 return new ShardTermsCountResponse(request.index(), request.shardId(), set);
             } catch (IOException ex) {
                 throw new ElasticSearchException(ex.getMessage(), ex);
+            } finally {
+                searcher.release();
+            }
+        }
+    }
+
+    /**
+     * Executes the request with the default <tt>termscount.stream.max_concurrent_shard_requests</tt> cap.
+     */
+    public void executeStreaming(TermsCountRequest request, TermsCountStreamListener listener) {
+        executeStreaming(request, maxConcurrentShardRequests, listener);
+    }
+
+    /**
+     * Executes the request by sending the shard requests itself, reporting each shard result to the listener as it
+     * arrives instead of waiting for the slowest shard. Needs the cluster state, so it is only available within a
+     * node, not through a <tt>TransportClient</tt>.
+     */
+    public void executeStreaming(TermsCountRequest request, int maxConcurrentShardRequests, TermsCountStreamListener listener) {
+        AsyncStreamingAction action;
+        try {
+            action = new AsyncStreamingAction(request, maxConcurrentShardRequests, listener);
+        } catch (Throwable e) {
+            listener.onFailure(e);
+            return;
+        }
+        action.start();
+    }
+
+    /**
+     * Sends the shard requests the same way {@link TransportBroadcastOperationAction} does, and reports
+     * them through {@link TermsCountStream}.
+     */
+    class AsyncStreamingAction extends TermsCountStream {
+
+        private final TermsCountRequest request;
+        private final ClusterState clusterState;
+        private final DiscoveryNodes nodes;
+        private final List<ShardIterator> shardsIts;
+        private final AtomicInteger indexCounter = new AtomicInteger();
+        private final AtomicReferenceArray<Object> shardsResponses;
+
+        private final Queue<Runnable> singleThreadOperations = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger singleThreadPending = new AtomicInteger();
+
+        AsyncStreamingAction(TermsCountRequest request, int maxConcurrentShardRequests, TermsCountStreamListener listener) {
+            this(request, clusterService.state(), maxConcurrentShardRequests, listener);
+        }
+
+        private AsyncStreamingAction(TermsCountRequest request, ClusterState clusterState, int maxConcurrentShardRequests, TermsCountStreamListener listener) {
+            this(request, clusterState, resolveShards(request, clusterState), maxConcurrentShardRequests, listener);
+        }
+
+        private AsyncStreamingAction(TermsCountRequest request, ClusterState clusterState, List<ShardIterator> shardsIts,
+                                     int maxConcurrentShardRequests, TermsCountStreamListener listener) {
+            super(shardsIts.size(), maxConcurrentShardRequests, listener, threadPool.executor(ThreadPool.Names.GENERIC), logger);
+            this.request = request;
+            this.clusterState = clusterState;
+            this.nodes = clusterState.nodes();
+            this.shardsIts = shardsIts;
+            this.shardsResponses = new AtomicReferenceArray<Object>(shardsIts.size());
+        }
+
+        @Override
+        protected void performShard(int shardIndex) {
+            ShardIterator shardIt = shardsIts.get(shardIndex);
+            ShardRouting shard = shardIt.nextOrNull();
+            if (shard != null && shard.currentNodeId().equals(nodes.localNodeId())
+                    && request.operationThreading() == BroadcastOperationThreading.SINGLE_THREAD) {
+                performOnSingleThread(shardIt, shard);
+            } else {
+                performOperation(shardIt, shard, request.operationThreading() == BroadcastOperationThreading.THREAD_PER_SHARD);
+            }
+        }
+
+        /**
+         * Runs local shard operations one after the other on a single forked thread.
+         */
+        void performOnSingleThread(final ShardIterator shardIt, final ShardRouting shard) {
+            singleThreadOperations.add(new Runnable() {
+                @Override
+                public void run() {
+                    performOperation(shardIt, shard, false);
+                }
+            });
+            if (singleThreadPending.getAndIncrement() == 0) {
+                threadPool.executor(executor()).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        do {
+                            singleThreadOperations.poll().run();
+                        } while (singleThreadPending.decrementAndGet() > 0);
+                    }
+                });
             }
         }
+
+        void performOperation(final ShardIterator shardIt, final ShardRouting shard, boolean localAsync) {
+            if (shard == null) {
+                // no more active shards... (we should not really get here, just safety)
+                onOperation(null, shardIt, null);
+            } else {
+                final ShardTermsCountRequest shardRequest = newShardRequest(shard, request);
+                if (shard.currentNodeId().equals(nodes.localNodeId())) {
+                    if (localAsync) {
+                        threadPool.executor(executor()).execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    onOperation(shard, shardOperation(shardRequest));
+                                } catch (Exception e) {
+                                    onOperation(shard, shardIt, e);
+                                }
+                            }
+                        });
+                    } else {
+                        try {
+                            onOperation(shard, shardOperation(shardRequest));
+                        } catch (Exception e) {
+                            onOperation(shard, shardIt, e);
+                        }
+                    }
+                } else {
+                    DiscoveryNode node = nodes.get(shard.currentNodeId());
+                    if (node == null) {
+                        // no node connected, act as failure
+                        onOperation(shard, shardIt, null);
+                    } else {
+                        transportService.sendRequest(node, transportShardAction, shardRequest, new BaseTransportResponseHandler<ShardTermsCountResponse>() {
+                            @Override
+                            public ShardTermsCountResponse newInstance() {
+                                return newShardResponse();
+                            }
+
+                            @Override
+                            public String executor() {
+                                // only queues the result, the listener is notified on the generic thread pool
+                                return ThreadPool.Names.SAME;
+                            }
+
+                            @Override
+                            public void handleResponse(ShardTermsCountResponse response) {
+                                onOperation(shard, response);
+                            }
+
+                            @Override
+                            public void handleException(TransportException e) {
+                                onOperation(shard, shardIt, e);
+                            }
+                        });
+                    }
+                }
+            }
+        }
+
+        void onOperation(ShardRouting shard, ShardTermsCountResponse response) {
+            shardsResponses.set(indexCounter.getAndIncrement(), response);
+            onShardResponse(shard.index(), shard.id(), response.getTermList());
+        }
+
+        void onOperation(@Nullable ShardRouting shard, ShardIterator shardIt, Throwable t) {
+            ShardRouting nextShard = shardIt.nextOrNull();
+            if (nextShard != null) {
+                if (t != null && logger.isTraceEnabled() && !ignoreException(t)) {
+                    if (shard != null) {
+                        logger.trace(shard.shortSummary() + ": Failed to execute [" + request + "]", t);
+                    } else {
+                        logger.trace(shardIt.shardId() + ": Failed to execute [" + request + "]", t);
+                    }
+                }
+                // we are not threaded here if we got here from the transport
+                // or we possibly threaded if we got from a local threaded one,
+                // in which case, the next shard in the partition will not be local one
+                // so there is no meaning to this flag
+                performOperation(shardIt, nextShard, true);
+            } else {
+                if (logger.isDebugEnabled() && t != null && !ignoreException(t)) {
+                    if (shard != null) {
+                        logger.debug(shard.shortSummary() + ": Failed to execute [" + request + "]", t);
+                    } else {
+                        logger.debug(shardIt.shardId() + ": Failed to execute [" + request + "]", t);
+                    }
+                }
+                int index = indexCounter.getAndIncrement();
+                if (accumulateExceptions()) {
+                    if (t == null) {
+                        if (!ignoreNonActiveExceptions()) {
+                            t = new BroadcastShardOperationFailedException(shardIt.shardId(), "No active shard(s)");
+                        }
+                    } else if (ignoreException(t)) {
+                        t = null;
+                    } else if (!(t instanceof BroadcastShardOperationFailedException)) {
+                        t = new BroadcastShardOperationFailedException(shardIt.shardId(), t);
+                    }
+                    shardsResponses.set(index, t);
+                }
+                onShardDone();
+            }
+        }
+
+        @Override
+        protected TermsCountResponse buildResponse() {
+            return newResponse(request, shardsResponses, clusterState);
+        }
+    }
+
+    private List<ShardIterator> resolveShards(TermsCountRequest request, ClusterState clusterState) {
+        ClusterBlockException blockException = checkGlobalBlock(clusterState, request);
+        if (blockException != null) {
+            throw blockException;
+        }
+        // update to concrete indices
+        String[] concreteIndices = clusterState.metaData().concreteIndices(request.indices(), false, true);
+        blockException = checkRequestBlock(clusterState, request, concreteIndices);
+        if (blockException != null) {
+            throw blockException;
+        }
+        List<ShardIterator> shardsIts = newArrayList();
+        for (ShardIterator shardIt : shards(clusterState, request, concreteIndices)) {
+            shardsIts.add(shardIt);
+        }
+        return shardsIts;
     }
 
     /**
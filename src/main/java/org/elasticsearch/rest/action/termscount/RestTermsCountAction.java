@@ -22,6 +22,8 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.termscount.TermsCountAction;
 import org.elasticsearch.action.termscount.TermsCountRequest;
 import org.elasticsearch.action.termscount.TermsCountResponse;
+import org.elasticsearch.action.termscount.TermsCountStreamListener;
+import org.elasticsearch.action.termscount.TransportTermsCountAction;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
@@ -31,7 +33,10 @@ import org.elasticsearch.rest.action.support.RestActions;
 import org.elasticsearch.rest.action.support.RestXContentBuilder;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
+import static org.elasticsearch.common.collect.Lists.newArrayList;
 import static org.elasticsearch.rest.RestRequest.Method.GET;
 import static org.elasticsearch.rest.RestRequest.Method.POST;
 import static org.elasticsearch.rest.RestStatus.OK;
@@ -39,9 +44,12 @@ import static org.elasticsearch.rest.action.support.RestActions.buildBroadcastSh
 
 public class RestTermsCountAction extends BaseRestHandler {
 
+    private final TransportTermsCountAction termsCountAction;
+
     @Inject
-    public RestTermsCountAction(Settings settings, Client client, RestController controller) {
+    public RestTermsCountAction(Settings settings, Client client, RestController controller, TransportTermsCountAction termsCountAction) {
         super(settings, client);
+        this.termsCountAction = termsCountAction;
         controller.registerHandler(POST, "/_termscount", this);
         controller.registerHandler(POST, "/{index}/_termscount", this);
         controller.registerHandler(POST, "/_termscount/{field}", this);
@@ -52,35 +60,107 @@ public class RestTermsCountAction extends BaseRestHandler {
         controller.registerHandler(GET, "/{index}/_termscount/{field}", this);
     }
 
+    /**
+     * With <tt>shard_results=true</tt> the request runs through {@link TransportTermsCountAction#executeStreaming},
+     * and the terms of each shard are added in the order the shards replied. A rest channel sends a single
+     * response, so the reply is still sent once all shards are done.
+     */
     @Override
     public void handleRequest(final RestRequest request, final RestChannel channel) {
         TermsCountRequest termsCountRequest = new TermsCountRequest(RestActions.splitIndices(request.param("index")));
         termsCountRequest.setField(request.param("field"));
+        if (request.paramAsBoolean("shard_results", false)) {
+            handleShardResultsRequest(request, channel, termsCountRequest);
+            return;
+        }
         client.execute(TermsCountAction.INSTANCE, termsCountRequest, new ActionListener<TermsCountResponse>() {
 
             @Override
             public void onResponse(TermsCountResponse response) {
-                try {
-                    XContentBuilder builder = RestXContentBuilder.restContentBuilder(request);
-                    builder.startObject();
-                    builder.field("ok", true);
-                    buildBroadcastShardsHeader(builder, response);
-                    builder.field("terms", response.getTerms());
-                    builder.endObject();
-                    channel.sendResponse(new XContentRestResponse(request, OK, builder));
-                } catch (Exception e) {
-                    onFailure(e);
-                }
+                sendResponse(request, channel, response, null);
             }
 
             @Override
             public void onFailure(Throwable e) {
-                try {
-                    channel.sendResponse(new XContentThrowableRestResponse(request, e));
-                } catch (IOException e1) {
-                    logger.error("Failed to send failure response", e1);
-                }
+                sendFailure(request, channel, e);
             }
         });
     }
-}
\ No newline at end of file
+
+    private void handleShardResultsRequest(final RestRequest request, final RestChannel channel, TermsCountRequest termsCountRequest) {
+        TermsCountStreamListener listener = new TermsCountStreamListener() {
+
+            private final List<ShardResult> shardResults = newArrayList();
+
+            @Override
+            public void onShardResult(String index, int shardId, Map<String, Integer> terms) {
+                shardResults.add(new ShardResult(index, shardId, terms));
+            }
+
+            @Override
+            public void onPartialAggregate(Map<String, Integer> terms, int completedShards, int totalShards) {
+            }
+
+            @Override
+            public void onComplete(TermsCountResponse response) {
+                sendResponse(request, channel, response, shardResults);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                sendFailure(request, channel, e);
+            }
+        };
+        if (request.hasParam("max_concurrent_shard_requests")) {
+            termsCountAction.executeStreaming(termsCountRequest, request.paramAsInt("max_concurrent_shard_requests", 0), listener);
+        } else {
+            termsCountAction.executeStreaming(termsCountRequest, listener);
+        }
+    }
+
+    private void sendResponse(RestRequest request, RestChannel channel, TermsCountResponse response, List<ShardResult> shardResults) {
+        try {
+            XContentBuilder builder = RestXContentBuilder.restContentBuilder(request);
+            builder.startObject();
+            builder.field("ok", true);
+            buildBroadcastShardsHeader(builder, response);
+            builder.field("terms", response.getTerms());
+            if (shardResults != null) {
+                builder.startArray("shard_results");
+                for (ShardResult shardResult : shardResults) {
+                    builder.startObject();
+                    builder.field("index", shardResult.index);
+                    builder.field("shard", shardResult.shardId);
+                    builder.field("terms", shardResult.terms);
+                    builder.endObject();
+                }
+                builder.endArray();
+            }
+            builder.endObject();
+            channel.sendResponse(new XContentRestResponse(request, OK, builder));
+        } catch (Exception e) {
+            sendFailure(request, channel, e);
+        }
+    }
+
+    private void sendFailure(RestRequest request, RestChannel channel, Throwable e) {
+        try {
+            channel.sendResponse(new XContentThrowableRestResponse(request, e));
+        } catch (IOException e1) {
+            logger.error("Failed to send failure response", e1);
+        }
+    }
+
+    static class ShardResult {
+
+        final String index;
+        final int shardId;
+        final Map<String, Integer> terms;
+
+        ShardResult(String index, int shardId, Map<String, Integer> terms) {
+            this.index = index;
+            this.shardId = shardId;
+            this.terms = terms;
+        }
+    }
+}
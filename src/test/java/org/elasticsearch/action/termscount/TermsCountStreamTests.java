@@ -0,0 +1,317 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.action.termscount;
+
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TermsCountStreamTests {
+
+    private static final ESLogger logger = Loggers.getLogger(TermsCountStreamTests.class);
+
+    private static final Executor SAME = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testCapsInFlightShardRequests() {
+        RecordingListener listener = new RecordingListener();
+        ManualStream stream = new ManualStream(5, 2, listener);
+        stream.start();
+        assertEquals(list(0, 1), stream.started);
+
+        stream.respond(1, terms("a", 1));
+        assertEquals(list(0, 1, 2), stream.started);
+        stream.respond(0, terms("a", 1));
+        stream.respond(2, terms("a", 1));
+        assertEquals(list(0, 1, 2, 3, 4), stream.started);
+        assertNull(listener.response);
+
+        stream.respond(4, terms("a", 1));
+        stream.respond(3, terms("a", 1));
+        assertEquals(5, stream.started.size());
+        assertNotNull(listener.response);
+        assertEquals(1, listener.completions);
+    }
+
+    @Test
+    public void testNextShardOnlySentOnceListenerReturns() {
+        final List<Integer> startedDuringCallback = new ArrayList<Integer>();
+        final ManualStream[] holder = new ManualStream[1];
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onShardResult(String index, int shardId, Map<String, Integer> terms) {
+                startedDuringCallback.add(holder[0].started.size());
+                super.onShardResult(index, shardId, terms);
+            }
+        };
+        holder[0] = new ManualStream(3, 1, listener);
+        holder[0].start();
+        holder[0].respond(0, terms("a", 1));
+        holder[0].respond(1, terms("a", 1));
+        holder[0].respond(2, terms("a", 1));
+        assertEquals(list(1, 2, 3), startedDuringCallback);
+    }
+
+    @Test
+    public void testResultsReportedInArrivalOrderWithSummedCounts() {
+        RecordingListener listener = new RecordingListener();
+        ManualStream stream = new ManualStream(3, 3, listener);
+        stream.start();
+        stream.respond(2, terms("a", 1, "b", 2));
+        stream.done(0);
+        stream.respond(1, terms("a", 3));
+
+        assertEquals(list(2, 1), listener.shardIds);
+        assertEquals(list(1, 3), listener.completedShards);
+        assertEquals(terms("a", 1, "b", 2), listener.partials.get(0));
+        assertEquals(terms("a", 4, "b", 2), listener.partials.get(1));
+        assertNotNull(listener.response);
+    }
+
+    @Test
+    public void testInactiveShardsCompleteImmediately() {
+        RecordingListener listener = new RecordingListener();
+        ManualStream stream = new ManualStream(4, 1, listener) {
+            @Override
+            protected void performShard(int shardIndex) {
+                super.performShard(shardIndex);
+                if (shardIndex != 2) {
+                    onShardDone();
+                }
+            }
+        };
+        stream.start();
+        assertEquals(list(0, 1, 2), stream.started);
+        assertNull(listener.response);
+
+        stream.respond(2, terms("a", 1));
+        assertEquals(list(0, 1, 2, 3), stream.started);
+        assertEquals(list(2), listener.shardIds);
+        assertNotNull(listener.response);
+    }
+
+    @Test
+    public void testNoShardsCompletesRightAway() {
+        RecordingListener listener = new RecordingListener();
+        ManualStream stream = new ManualStream(0, 2, listener);
+        stream.start();
+        assertTrue(stream.started.isEmpty());
+        assertNotNull(listener.response);
+        assertEquals(1, listener.completions);
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopTheStream() {
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onShardResult(String index, int shardId, Map<String, Integer> terms) {
+                super.onShardResult(index, shardId, terms);
+                throw new RuntimeException("listener failure");
+            }
+        };
+        ManualStream stream = new ManualStream(2, 1, listener);
+        stream.start();
+        stream.respond(0, terms("a", 1));
+        stream.respond(1, terms("a", 1));
+        assertEquals(list(0, 1), listener.shardIds);
+        assertNotNull(listener.response);
+    }
+
+    @Test
+    public void testResponseFailureGoesToOnFailure() {
+        RecordingListener listener = new RecordingListener();
+        ManualStream stream = new ManualStream(1, 1, listener) {
+            @Override
+            protected TermsCountResponse buildResponse() {
+                throw new RuntimeException("response failure");
+            }
+        };
+        stream.start();
+        stream.respond(0, terms("a", 1));
+        assertNull(listener.response);
+        assertEquals("response failure", listener.failure.getMessage());
+    }
+
+    @Test(expected = ElasticSearchIllegalArgumentException.class)
+    public void testRejectsNonPositiveCap() {
+        new ManualStream(1, 0, new RecordingListener());
+    }
+
+    @Test
+    public void testConcurrentResultsAreNotifiedOneAtATime() throws Exception {
+        final int totalShards = 200;
+        final int cap = 4;
+        final ExecutorService shards = Executors.newFixedThreadPool(8);
+        ExecutorService notify = Executors.newCachedThreadPool();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger activeCallbacks = new AtomicInteger();
+        final AtomicInteger overlappingCallbacks = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onShardResult(String index, int shardId, Map<String, Integer> terms) {
+                if (activeCallbacks.incrementAndGet() != 1) {
+                    overlappingCallbacks.incrementAndGet();
+                }
+                super.onShardResult(index, shardId, terms);
+                activeCallbacks.decrementAndGet();
+            }
+
+            @Override
+            public void onComplete(TermsCountResponse response) {
+                super.onComplete(response);
+                latch.countDown();
+            }
+        };
+        try {
+            TermsCountStream stream = new TermsCountStream(totalShards, cap, listener, notify, logger) {
+                @Override
+                protected void performShard(final int shardIndex) {
+                    int current = inFlight.incrementAndGet();
+                    while (true) {
+                        int max = maxInFlight.get();
+                        if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                            break;
+                        }
+                    }
+                    shards.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            inFlight.decrementAndGet();
+                            onShardResponse("test", shardIndex, terms("a", 1));
+                        }
+                    });
+                }
+
+                @Override
+                protected TermsCountResponse buildResponse() {
+                    return new TermsCountResponse(totalShards, totalShards, 0, null, new HashMap<String, Integer>());
+                }
+            };
+            stream.start();
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            shards.shutdownNow();
+            notify.shutdownNow();
+        }
+        assertEquals(0, overlappingCallbacks.get());
+        assertTrue("max in flight was " + maxInFlight.get(), maxInFlight.get() <= cap);
+        assertEquals(totalShards, listener.shardIds.size());
+        assertEquals(terms("a", totalShards), listener.partials.get(totalShards - 1));
+    }
+
+    private static List<Integer> list(Integer... values) {
+        List<Integer> list = new ArrayList<Integer>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static Map<String, Integer> terms(Object... termsAndCounts) {
+        Map<String, Integer> terms = new HashMap<String, Integer>();
+        for (int i = 0; i < termsAndCounts.length; i += 2) {
+            terms.put((String) termsAndCounts[i], (Integer) termsAndCounts[i + 1]);
+        }
+        return terms;
+    }
+
+    /**
+     * Records the started shards, the test completes them by hand.
+     */
+    static class ManualStream extends TermsCountStream {
+
+        final int totalShards;
+        final List<Integer> started = new ArrayList<Integer>();
+
+        ManualStream(int totalShards, int maxConcurrentShardRequests, TermsCountStreamListener listener) {
+            super(totalShards, maxConcurrentShardRequests, listener, SAME, logger);
+            this.totalShards = totalShards;
+        }
+
+        @Override
+        protected void performShard(int shardIndex) {
+            started.add(shardIndex);
+        }
+
+        @Override
+        protected TermsCountResponse buildResponse() {
+            return new TermsCountResponse(totalShards, totalShards, 0, null, new HashMap<String, Integer>());
+        }
+
+        void respond(int shardIndex, Map<String, Integer> terms) {
+            onShardResponse("test", shardIndex, terms);
+        }
+
+        void done(int shardIndex) {
+            onShardDone();
+        }
+    }
+
+    static class RecordingListener implements TermsCountStreamListener {
+
+        final List<Integer> shardIds = new ArrayList<Integer>();
+        final List<Integer> completedShards = new ArrayList<Integer>();
+        final List<Map<String, Integer>> partials = new ArrayList<Map<String, Integer>>();
+        volatile TermsCountResponse response;
+        volatile Throwable failure;
+        int completions;
+
+        @Override
+        public void onShardResult(String index, int shardId, Map<String, Integer> terms) {
+            shardIds.add(shardId);
+        }
+
+        @Override
+        public void onPartialAggregate(Map<String, Integer> terms, int completedShards, int totalShards) {
+            this.completedShards.add(completedShards);
+            partials.add(new HashMap<String, Integer>(terms));
+        }
+
+        @Override
+        public void onComplete(TermsCountResponse response) {
+            this.response = response;
+            completions++;
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            this.failure = e;
+        }
+    }
+}